@@ -13,12 +13,18 @@ class ConfigurationFileParser<V1> {
     // Cached providers, in instantiation order
     private final LinkedHashMap<String, Function<String, V1>> providers;
 
-    ConfigurationFileParser(final LinkedHashMap<String, Function<String, V1>> providers) {
+    // Sample representations, by provider-class name
+    private final Map<String, List<String>> samples;
+
+    ConfigurationFileParser(final LinkedHashMap<String, Function<String, V1>> providers,
+                            final Map<String, List<String>> samples) {
         this.providers = providers;
+        this.samples = samples;
     }
 
     // Parse a single line from the given configuration file, adding the name
-    // on the line to the names list.
+    // on the line to the names list and the sample representations following
+    // an '=' to the samples map.
     //
     private int parseLine(Class<?> valueFactory, URL u, BufferedReader r, int lc,
                           List<String> names)
@@ -29,8 +35,16 @@ class ConfigurationFileParser<V1> {
         }
         int ci = ln.indexOf('#');
         if (ci >= 0) ln = ln.substring(0, ci);
+        List<String> lineSamples = null;
+        int ei = ln.indexOf('=');
+        if (ei >= 0) {
+            lineSamples = parseSamples(ln.substring(ei + 1));
+            ln = ln.substring(0, ei);
+        }
         ln = ln.trim();
         int n = ln.length();
+        if ((n == 0) && (lineSamples != null))
+            throw ValueTypeLoaderError.fail(valueFactory, u, lc, "Sample representations without provider-class name");
         if (n != 0) {
             if ((ln.indexOf(' ') >= 0) || (ln.indexOf('\t') >= 0))
                 throw ValueTypeLoaderError.fail(valueFactory, u, lc, "Illegal configuration-file syntax");
@@ -42,12 +56,26 @@ class ConfigurationFileParser<V1> {
                 if (!Character.isJavaIdentifierPart(cp) && (cp != '.'))
                     throw ValueTypeLoaderError.fail(valueFactory, u, lc, "Illegal provider-class name: " + ln);
             }
+            if (lineSamples != null)
+                samples.putIfAbsent(ln, lineSamples);
             if (!providers.containsKey(ln) && !names.contains(ln))
                 names.add(ln);
         }
         return lc + 1;
     }
 
+    // Split the sample representations of a line at each '|'; surrounding
+    // white space is removed, so that an empty entry denotes the empty
+    // representation.
+    //
+    private static List<String> parseSamples(String ln) {
+        List<String> lineSamples = new ArrayList<>();
+        for (String sample : ln.split("\\|", -1)) {
+            lineSamples.add(sample.trim());
+        }
+        return Collections.unmodifiableList(lineSamples);
+    }
+
     // Parse the content of the given URL as a provider-configuration file.
     //
     // @param  valueFactoryClass
@@ -0,0 +1,465 @@
+package eu.dirk.haase.lookup;
+
+import eu.dirk.haase.value.NonValue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * A {@link Flow.Processor} which converts textual records into value objects
+ * using the providers found by a {@link ValueTypeLoader}.
+ * <p>
+ * <p> Records are collected into batches of <tt>batchSize</tt> and every
+ * batch is converted by a worker of the given {@link Executor}.  Each record
+ * is offered to the providers in instantiation order; the first result which
+ * is neither <tt>null</tt> nor a {@linkplain NonValue#isNonValue non-value}
+ * is published downstream.  Records no provider can convert are handed to
+ * the non-value consumer instead.  The non-value consumer is never invoked
+ * concurrently.  Every record is converted to a <tt>String</tt> as soon as
+ * it arrives, so upstream may reuse mutable records.
+ * <p>
+ * <p> If <tt>ordered</tt> is <tt>true</tt>, values are published in the order
+ * in which the records arrived; otherwise batches are published as soon as
+ * they are converted.
+ * <p>
+ * <p> Demand is bounded: at most <tt>batchSize * parallelism</tt> records are
+ * requested from upstream but not yet delivered, either to the subscriber
+ * or to the non-value consumer.  Further records are requested only as
+ * earlier ones are delivered, so a slow subscriber slows upstream down and
+ * a stalled one stops it.  No thread is blocked in the meantime: values the
+ * subscriber has not yet requested are queued, and all subscriber signals
+ * are delivered by tasks run on the executor.  No records are requested
+ * before the subscriber has subscribed.  If the subscriber cancels, the
+ * upstream subscription is cancelled as well.  Demand and cancellation are
+ * signalled to the upstream subscription serially, whichever worker thread
+ * causes them.
+ * <p>
+ * <p> A processor supports a single subscriber; any further subscriber is
+ * rejected with an {@link IllegalStateException}.
+ * <p>
+ * <p> The providers are taken from the loader when the processor is created,
+ * so the loader is not used concurrently afterwards.
+ *
+ * @param <V> The type of the value objects created by the providers
+ */
+public final class ValueConversionProcessor<V> implements Flow.Processor<CharSequence, V> {
+
+    static final int DEFAULT_BATCH_SIZE = 64;
+
+    private final List<Function<String, V>> factories;
+    private final Consumer<? super CharSequence> nonValues;
+    private final Executor executor;
+    private final int batchSize;
+    private final int parallelism;
+    private final boolean ordered;
+
+    private final Object publishLock = new Object();
+
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile Flow.Subscription upstream;
+    private volatile boolean upstreamDone;
+
+    // Demand and cancellation not yet signalled upstream; drained by the
+    // single thread which raises signalling from zero
+    private final AtomicLong pendingCredit = new AtomicLong();
+    private final AtomicInteger signalling = new AtomicInteger();
+    private volatile boolean cancelPending;
+    private boolean cancelled;
+
+    // Values not yet requested by the subscriber, in publication order, and
+    // the state of the subscriber; signals to the subscriber are only sent
+    // by the single drain task which raises draining from zero
+    private final AtomicReference<Flow.Subscriber<? super V>> subscriber = new AtomicReference<>();
+    private final Queue<V> ready = new ConcurrentLinkedQueue<>();
+    private final AtomicLong requested = new AtomicLong();
+    private final AtomicInteger draining = new AtomicInteger();
+    private final AtomicReference<Throwable> error = new AtomicReference<>();
+    private volatile boolean subscribed;
+    private volatile boolean downstreamCancelled;
+    private volatile boolean done;
+    private boolean terminated;
+
+    // Only accessed from the (serial) upstream signals
+    private List<String> batch;
+    private CompletableFuture<Void> tail = CompletableFuture.completedFuture(null);
+
+    private ValueConversionProcessor(final ValueTypeLoader<V> loader,
+                                     final Consumer<? super CharSequence> nonValues,
+                                     final Executor executor,
+                                     final int batchSize,
+                                     final int parallelism,
+                                     final boolean ordered) {
+        Objects.requireNonNull(loader, "Value-Type-Loader cannot be null");
+        this.nonValues = Objects.requireNonNull(nonValues, "Non-value consumer cannot be null");
+        this.executor = Objects.requireNonNull(executor, "Executor cannot be null");
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        }
+        this.batchSize = batchSize;
+        this.parallelism = parallelism;
+        this.ordered = ordered;
+        this.factories = new ArrayList<>();
+        for (Function<String, V> factory : loader) {
+            this.factories.add(factory);
+        }
+        this.batch = new ArrayList<>(batchSize);
+    }
+
+    /**
+     * Creates a new ordered conversion processor which converts batches of
+     * {@value #DEFAULT_BATCH_SIZE} records on the {@linkplain
+     * ForkJoinPool#commonPool() common pool}.
+     *
+     * @param <V2>      the type of the value objects
+     * @param loader    The loader providing the value factories
+     * @param nonValues Receives the records which no provider can convert
+     * @return A new conversion processor
+     */
+    public static <V2> ValueConversionProcessor<V2> create(final ValueTypeLoader<V2> loader,
+                                                           final Consumer<? super CharSequence> nonValues) {
+        return create(loader, nonValues, ForkJoinPool.commonPool(), DEFAULT_BATCH_SIZE,
+                ForkJoinPool.getCommonPoolParallelism(), true);
+    }
+
+    /**
+     * Creates a new conversion processor.
+     *
+     * @param <V2>        the type of the value objects
+     * @param loader      The loader providing the value factories
+     * @param nonValues   Receives the records which no provider can convert
+     * @param executor    The executor running the conversion of the batches
+     *                    and delivering the signals to the subscriber
+     * @param batchSize   The number of records converted together
+     * @param parallelism The maximum number of batches converted at once
+     * @param ordered     <tt>true</tt> if values are to be published in the
+     *                    order of their records
+     * @return A new conversion processor
+     * @throws IllegalArgumentException if <tt>batchSize</tt> or
+     *                                  <tt>parallelism</tt> is not positive
+     */
+    public static <V2> ValueConversionProcessor<V2> create(final ValueTypeLoader<V2> loader,
+                                                           final Consumer<? super CharSequence> nonValues,
+                                                           final Executor executor,
+                                                           final int batchSize,
+                                                           final int parallelism,
+                                                           final boolean ordered) {
+        return new ValueConversionProcessor<>(loader, nonValues, executor, batchSize, parallelism, ordered);
+    }
+
+    @Override
+    public void subscribe(final Flow.Subscriber<? super V> subscriber) {
+        Objects.requireNonNull(subscriber);
+        if (!this.subscriber.compareAndSet(null, subscriber)) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                public void request(final long n) {
+                }
+
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException("Only a single subscriber is supported"));
+            return;
+        }
+        subscriber.onSubscribe(new DownstreamSubscription());
+        subscribed = true;
+        startIfReady();
+        signalDownstream();
+    }
+
+    @Override
+    public void onSubscribe(final Flow.Subscription subscription) {
+        Objects.requireNonNull(subscription);
+        if (upstream != null) {
+            subscription.cancel();
+            return;
+        }
+        upstream = subscription;
+        startIfReady();
+    }
+
+    private void startIfReady() {
+        if ((upstream != null) && subscribed && started.compareAndSet(false, true)) {
+            requestUpstream((long) batchSize * parallelism);
+        }
+    }
+
+    private void requestUpstream(final long n) {
+        pendingCredit.addAndGet(n);
+        signalUpstream();
+    }
+
+    // Records leaving the processor make room for as many new ones.
+    //
+    private void returnCredit(final long n) {
+        if (!upstreamDone) {
+            requestUpstream(n);
+        }
+    }
+
+    private void cancelUpstream() {
+        cancelPending = true;
+        if (upstream != null) {
+            signalUpstream();
+        }
+    }
+
+    // Signal pending demand or cancellation to the upstream subscription.
+    // Concurrent callers only record their signal; the thread which entered
+    // first drains until no signals are left, so that request and cancel
+    // are never invoked concurrently.
+    //
+    private void signalUpstream() {
+        if (signalling.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        do {
+            if (!cancelled) {
+                if (cancelPending) {
+                    cancelled = true;
+                    upstream.cancel();
+                } else {
+                    final long n = pendingCredit.getAndSet(0);
+                    if (n > 0) {
+                        upstream.request(n);
+                    }
+                }
+            }
+            missed = signalling.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    @Override
+    public void onNext(final CharSequence record) {
+        Objects.requireNonNull(record, "Record cannot be null");
+        if (done || downstreamCancelled) {
+            return;
+        }
+        batch.add(record.toString());
+        if (batch.size() >= batchSize) {
+            dispatch();
+        }
+    }
+
+    @Override
+    public void onError(final Throwable throwable) {
+        Objects.requireNonNull(throwable);
+        upstreamDone = true;
+        terminate(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        if (!batch.isEmpty()) {
+            dispatch();
+        }
+        upstreamDone = true;
+        completeIfDone();
+    }
+
+    private void dispatch() {
+        final List<String> records = batch;
+        batch = new ArrayList<>(batchSize);
+        inFlight.incrementAndGet();
+        final CompletableFuture<List<V>> converted = CompletableFuture.supplyAsync(() -> convert(records), executor);
+        final CompletableFuture<Void> published;
+        if (ordered) {
+            published = tail.thenCombine(converted, (ignored, values) -> {
+                publish(records, values);
+                return null;
+            });
+            tail = published;
+        } else {
+            published = converted.thenAccept((values) -> publish(records, values));
+        }
+        published.whenComplete((ignored, ex) -> {
+            if (ex != null) {
+                fail(ex.getCause() != null ? ex.getCause() : ex);
+            } else {
+                inFlight.decrementAndGet();
+                completeIfDone();
+            }
+        });
+    }
+
+    // Converts the given records; a null element marks a record which no
+    // provider could convert.
+    //
+    private List<V> convert(final List<String> records) {
+        final List<V> values = new ArrayList<>(records.size());
+        for (String record : records) {
+            values.add(convert(record));
+        }
+        return values;
+    }
+
+    private V convert(final String representation) {
+        for (Function<String, V> factory : factories) {
+            final V value = factory.apply(representation);
+            if ((value != null) && !NonValue.isNonValue.test(value)) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    // Queues the values for the subscriber and hands the non-values to the
+    // non-value consumer; never blocks.
+    //
+    private void publish(final List<String> records, final List<V> values) {
+        int routed = 0;
+        synchronized (publishLock) {
+            if (done || downstreamCancelled) {
+                return;
+            }
+            for (int i = 0; i < records.size(); ++i) {
+                final V value = values.get(i);
+                if (value != null) {
+                    ready.offer(value);
+                } else {
+                    nonValues.accept(records.get(i));
+                    ++routed;
+                }
+            }
+        }
+        if (routed > 0) {
+            returnCredit(routed);
+        }
+        signalDownstream();
+    }
+
+    private void completeIfDone() {
+        if (upstreamDone && (inFlight.get() == 0)) {
+            done = true;
+            signalDownstream();
+        }
+    }
+
+    private void fail(final Throwable throwable) {
+        cancelUpstream();
+        terminate(throwable);
+    }
+
+    private void terminate(final Throwable throwable) {
+        error.compareAndSet(null, throwable);
+        done = true;
+        signalDownstream();
+    }
+
+    private void signalDownstream() {
+        if (draining.getAndIncrement() == 0) {
+            executor.execute(this::drain);
+        }
+    }
+
+    // Deliver queued values within the subscriber's demand, followed by the
+    // terminal signal.  Runs as a single task at a time; signals arriving
+    // meanwhile make it loop again.
+    //
+    private void drain() {
+        int missed = 1;
+        do {
+            if (subscribed && !terminated) {
+                drainReady(subscriber.get());
+            }
+            missed = draining.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private void drainReady(final Flow.Subscriber<? super V> subscriber) {
+        final long demand = requested.get();
+        long emitted = 0;
+        while (true) {
+            if (downstreamCancelled) {
+                terminated = true;
+                ready.clear();
+                return;
+            }
+            final boolean d = done;
+            final Throwable throwable = error.get();
+            if (throwable != null) {
+                terminated = true;
+                ready.clear();
+                subscriber.onError(throwable);
+                return;
+            }
+            final V value = (emitted < demand) ? ready.poll() : null;
+            if (value == null) {
+                if (d && ready.isEmpty()) {
+                    terminated = true;
+                    subscriber.onComplete();
+                    return;
+                }
+                break;
+            }
+            try {
+                subscriber.onNext(value);
+            } catch (Throwable x) {
+                downstreamCancelled = true;
+                cancelUpstream();
+                terminated = true;
+                ready.clear();
+                return;
+            }
+            ++emitted;
+        }
+        if (emitted > 0) {
+            if (demand != Long.MAX_VALUE) {
+                requested.addAndGet(-emitted);
+            }
+            returnCredit(emitted);
+        }
+    }
+
+    private final class DownstreamSubscription implements Flow.Subscription {
+
+        @Override
+        public void request(final long n) {
+            if (n <= 0) {
+                fail(new IllegalArgumentException("Non-positive request: " + n));
+                return;
+            }
+            // Saturates at Long.MAX_VALUE, which stands for unbounded demand
+            requested.getAndUpdate((current) -> (current + n < 0) ? Long.MAX_VALUE : current + n);
+            signalDownstream();
+        }
+
+        @Override
+        public void cancel() {
+            if (!downstreamCancelled) {
+                downstreamCancelled = true;
+                cancelUpstream();
+                signalDownstream();
+            }
+        }
+
+    }
+
+    /**
+     * Returns a string describing this processor.
+     *
+     * @return A descriptive string
+     */
+    public String toString() {
+        return getClass().getName() + "[" + factories + ", batchSize=" + batchSize
+                + ", parallelism=" + parallelism + ", ordered=" + ordered + "]";
+    }
+
+}
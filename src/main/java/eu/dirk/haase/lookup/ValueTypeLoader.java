@@ -1,7 +1,11 @@
 package eu.dirk.haase.lookup;
 
+import eu.dirk.haase.Valuefactory;
+import eu.dirk.haase.value.NonValue;
+
 import java.security.AccessControlContext;
 import java.security.AccessController;
+import java.time.Duration;
 import java.util.*;
 import java.util.function.Function;
 
@@ -44,6 +48,17 @@ import java.util.function.Function;
  * each line all characters following the first comment character are ignored.
  * The file must be encoded in UTF-8.
  * <p>
+ * <p> A provider-class name may be followed by an <tt>'='</tt> and a list of
+ * sample representations separated by <tt>'|'</tt>, which are used by the
+ * {@link #warmUp warmUp} method.  White space surrounding each sample is
+ * ignored, so an empty entry denotes the empty representation:
+ * <p>
+ * <blockquote><pre>
+ * com.example.impl.MyGeldBetrag = 12.50 | 0.00    # Sample amounts</pre></blockquote>
+ * <p>
+ * If a provider is named with samples more than once, the first samples
+ * found are used.
+ * <p>
  * <p> If a particular concrete provider class is named in more than one
  * configuration file, or is named in the same configuration file more than
  * once, then the duplicates are ignored.  The configuration file naming a
@@ -161,6 +176,12 @@ public final class ValueTypeLoader<V1>
     // Cached providers, in instantiation order
     private final LinkedHashMap<String, Function<String, V1>> providers;
 
+    // Sample representations, by provider-class name
+    private final Map<String, List<String>> samples;
+
+    // Keeps the warm-up results reachable
+    private volatile int warmUpSink;
+
     // The current lazy-lookup iterator
     private LazyIterator lookupIterator;
     private final ConfigurationFileParser<V1> parser;
@@ -178,15 +199,17 @@ public final class ValueTypeLoader<V1>
      */
     public void reload() {
         providers.clear();
+        samples.clear();
         lookupIterator = new LazyIterator(parser, providers, acc, valueFactoryClass, loader);
     }
 
     private ValueTypeLoader(Class<V1> valueFactoryClass, ClassLoader cl) {
         this.providers = new LinkedHashMap<>();
+        this.samples = new HashMap<>();
         this.valueFactoryClass = Objects.requireNonNull(valueFactoryClass, "Value-Factory interface cannot be null");
         this.loader = (cl == null) ? ClassLoader.getSystemClassLoader() : cl;
         this.acc = (System.getSecurityManager() != null) ? AccessController.getContext() : null;
-        this.parser = new ConfigurationFileParser(providers);
+        this.parser = new ConfigurationFileParser(providers, samples);
         reload();
     }
 
@@ -262,6 +285,74 @@ public final class ValueTypeLoader<V1>
         };
     }
 
+    /**
+     * Loads all providers of this loader's valueFactoryClass and exercises
+     * each of them with the sample representations declared in its
+     * provider-configuration file, so that the conversion code is compiled
+     * before the providers are put under load.
+     * <p>
+     * <p> Every sample is passed <tt>iterations</tt> times to the provider's
+     * {@link Function#apply apply} method and, if the provider is also a
+     * {@link Valuefactory}, to its {@link Valuefactory#valueOf valueOf}
+     * method.  The non-value path of such a provider is exercised as well,
+     * by passing a <tt>null</tt> representation to <tt>valueOf</tt> in every
+     * iteration.  Providers without samples are loaded but not exercised.
+     *
+     * @param iterations The number of times each sample is converted
+     * @return The time the warm-up took
+     * @throws IllegalArgumentException if <tt>iterations</tt> is negative
+     * @throws ValueTypeLoaderError     if a provider cannot be loaded or
+     *                                  fails to convert a sample
+     */
+    public Duration warmUp(final int iterations) {
+        if (iterations < 0) {
+            throw new IllegalArgumentException("Iterations must not be negative: " + iterations);
+        }
+        final long start = System.nanoTime();
+        for (Iterator<Function<String, V1>> i = iterator(); i.hasNext(); ) {
+            i.next();
+        }
+        int sink = 0;
+        for (Map.Entry<String, Function<String, V1>> provider : providers.entrySet()) {
+            final List<String> providerSamples = samples.get(provider.getKey());
+            if (providerSamples == null) {
+                continue;
+            }
+            try {
+                for (int i = 0; i < iterations; ++i) {
+                    for (String sample : providerSamples) {
+                        sink += warmUp(provider.getValue(), sample);
+                    }
+                    sink += warmUpNonValue(provider.getValue());
+                }
+            } catch (RuntimeException x) {
+                throw ValueTypeLoaderError.fail(valueFactoryClass,
+                        "Provider " + provider.getKey() + " failed during warm-up", x);
+            }
+        }
+        warmUpSink = sink;
+        return Duration.ofNanos(System.nanoTime() - start);
+    }
+
+    private static int warmUp(final Function<String, ?> provider, final String sample) {
+        int sink = isValue(provider.apply(sample));
+        if (provider instanceof Valuefactory) {
+            sink += isValue(((Valuefactory<?>) provider).valueOf(sample));
+        }
+        return sink;
+    }
+
+    private static int warmUpNonValue(final Function<String, ?> provider) {
+        if (provider instanceof Valuefactory) {
+            return isValue(((Valuefactory<?>) provider).valueOf(null));
+        }
+        return 0;
+    }
+
+    private static int isValue(final Object result) {
+        return ((result == null) || NonValue.isNonValue.test(result)) ? 0 : 1;
+    }
+
     /**
      * Creates a new valueFactoryClass loader for the given valueFactoryClass type and class
      * loader.
@@ -0,0 +1,200 @@
+package eu.dirk.haase.value;
+
+import eu.dirk.haase.Valuefactory;
+
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link Valuefactory} decorator which memoizes the results of an expensive
+ * {@link Valuefactory#valueOf(CharSequence) valueOf} implementation.
+ * <p>
+ * <p> Results are kept in a {@link ConcurrentHashMap}, keyed by the string
+ * form of the representation.  Concurrent requests for the same
+ * representation are coalesced: the first thread runs the delegate, all
+ * other threads wait for its result instead of running the delegate again.
+ * Requests for different representations never block each other.
+ * <p>
+ * <p> Results which are <tt>null</tt> or {@linkplain NonValue#isNonValue
+ * non-values} (including value objects whose {@link
+ * eu.dirk.haase.ValueObject#isNonValue isNonValue} is <tt>true</tt>) are
+ * handed to all waiting threads but are not retained, so that invalid input
+ * cannot displace valid values from the cache.  A <tt>null</tt>
+ * representation is passed straight to the delegate.  If the delegate
+ * throws, the exception is rethrown to all waiting threads and nothing is
+ * cached.
+ * <p>
+ * <p> The cache holds at most <tt>maximumSize</tt> values.  Once this bound
+ * is exceeded, entries are evicted by the <i>second-chance</i> policy: the
+ * cached keys are kept in insertion order and every cache hit marks its
+ * entry as referenced.  A referenced entry which reaches the head of the
+ * queue is not evicted but unmarked and moved to the tail; the first
+ * unreferenced entry is evicted.  Frequently used values therefore stay
+ * cached, while each hit costs no more than a single flag write.
+ * <p>
+ * <p> Instances of this class are safe for use by multiple concurrent
+ * threads, provided the delegate is.
+ *
+ * @param <T> The value type created by the delegate
+ */
+public final class MemoizingValuefactory<T> implements Valuefactory<T> {
+
+    private final Valuefactory<T> delegate;
+    private final int maximumSize;
+
+    // Memoized (or still running) results, keyed by representation
+    private final ConcurrentHashMap<String, Entry<T>> cache;
+
+    // Cached keys, in insertion (or second-chance) order; used for eviction
+    private final Queue<String> evictionOrder;
+    private final AtomicInteger size;
+
+    private MemoizingValuefactory(final Valuefactory<T> delegate, final int maximumSize) {
+        this.delegate = Objects.requireNonNull(delegate, "Value-Factory cannot be null");
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("Maximum size must be positive: " + maximumSize);
+        }
+        this.maximumSize = maximumSize;
+        this.cache = new ConcurrentHashMap<>();
+        this.evictionOrder = new ConcurrentLinkedQueue<>();
+        this.size = new AtomicInteger();
+    }
+
+    /**
+     * Creates a memoizing decorator for the given value factory.
+     *
+     * @param <V>         the value type created by the value factory
+     * @param delegate    The value factory whose results are memoized
+     * @param maximumSize The maximum number of values retained in the cache
+     * @return A new memoizing value factory
+     * @throws IllegalArgumentException if <tt>maximumSize</tt> is not positive
+     */
+    public static <V> MemoizingValuefactory<V> memoize(final Valuefactory<V> delegate, final int maximumSize) {
+        return new MemoizingValuefactory<>(delegate, maximumSize);
+    }
+
+    @Override
+    public T valueOf(final CharSequence representation) {
+        if (representation == null) {
+            return delegate.valueOf(null);
+        }
+        final String key = representation.toString();
+        Entry<T> entry = cache.get(key);
+        if (entry == null) {
+            final Entry<T> newEntry = new Entry<>();
+            entry = cache.putIfAbsent(key, newEntry);
+            if (entry == null) {
+                return compute(key, newEntry);
+            }
+        }
+        if (!entry.referenced) {
+            entry.referenced = true;
+        }
+        try {
+            return entry.future.join();
+        } catch (CompletionException ex) {
+            throw rethrow(ex.getCause());
+        }
+    }
+
+    private T compute(final String key, final Entry<T> entry) {
+        final T value;
+        try {
+            value = delegate.valueOf(key);
+        } catch (Throwable ex) {
+            // Also covers undeclared checked exceptions, which would
+            // otherwise leave the entry pending forever
+            cache.remove(key, entry);
+            entry.future.completeExceptionally(ex);
+            throw ex;
+        }
+        if ((value == null) || NonValue.isNonValue.test(value)) {
+            cache.remove(key, entry);
+        } else {
+            evictionOrder.add(key);
+            if (size.incrementAndGet() > maximumSize) {
+                evict();
+            }
+        }
+        entry.future.complete(value);
+        return value;
+    }
+
+    // Evict entries until the cache is within its bound again, giving every
+    // referenced entry a second chance.  Terminates since each entry is
+    // unmarked when it is passed over.
+    //
+    private void evict() {
+        while (size.get() > maximumSize) {
+            final String eldest = evictionOrder.poll();
+            if (eldest == null) {
+                return;
+            }
+            final Entry<T> entry = cache.get(eldest);
+            if (entry == null) {
+                continue;
+            }
+            if (entry.referenced) {
+                entry.referenced = false;
+                evictionOrder.add(eldest);
+            } else if (cache.remove(eldest, entry)) {
+                size.decrementAndGet();
+            }
+        }
+    }
+
+    private static RuntimeException rethrow(final Throwable cause) {
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new IllegalStateException(cause);
+    }
+
+    /**
+     * Returns the number of values currently retained in the cache.
+     *
+     * @return The number of cached values
+     */
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * Discards all cached values.  Computations still in progress are not
+     * interrupted.
+     */
+    public void clear() {
+        String key;
+        while ((key = evictionOrder.poll()) != null) {
+            cache.remove(key);
+            size.decrementAndGet();
+        }
+    }
+
+    private static final class Entry<T> {
+
+        final CompletableFuture<T> future = new CompletableFuture<>();
+
+        // Set on every cache hit, cleared when passed over by eviction
+        volatile boolean referenced;
+
+    }
+
+    /**
+     * Returns a string describing this value factory.
+     *
+     * @return A descriptive string
+     */
+    public String toString() {
+        return getClass().getName() + "[" + delegate + ", maximumSize=" + maximumSize + "]";
+    }
+
+}
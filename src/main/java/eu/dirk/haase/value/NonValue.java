@@ -1,5 +1,6 @@
 package eu.dirk.haase.value;
 
+import eu.dirk.haase.ValueObject;
 import eu.dirk.haase.Valuefactory;
 
 import java.lang.reflect.InvocationHandler;
@@ -29,7 +30,10 @@ public final class NonValue {
     }
 
     private static boolean isNonValue(final Object value) {
-        return (value instanceof NonValueMarker);
+        if (value instanceof NonValueMarker) {
+            return true;
+        }
+        return (value instanceof ValueObject) && ((ValueObject<?>) value).isNonValue();
     }
 
     private static class NonValueHandler implements InvocationHandler {
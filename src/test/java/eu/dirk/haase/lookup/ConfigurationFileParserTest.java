@@ -0,0 +1,75 @@
+package eu.dirk.haase.lookup;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.BlockJUnit4ClassRunner;
+
+import java.io.File;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@RunWith(BlockJUnit4ClassRunner.class)
+public class ConfigurationFileParserTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final Map<String, List<String>> samples = new HashMap<>();
+    private final ConfigurationFileParser<Object> parser =
+            new ConfigurationFileParser<>(new LinkedHashMap<String, Function<String, Object>>(), samples);
+
+
+    @Test
+    public void test_samples() throws Exception {
+        // Given
+        URL config = config("com.example.A = 1 | 2.50 |   # comment",
+                "com.example.B",
+                "com.example.A = 3");
+        // When
+        Iterator<String> names = parser.parse(Object.class, config);
+        // Then
+        assertThat(names).toIterable().containsExactly("com.example.A", "com.example.B");
+        assertThat(samples).hasSize(1);
+        assertThat(samples.get("com.example.A")).containsExactly("1", "2.50", "");
+    }
+
+    @Test
+    public void test_samples_without_name() throws Exception {
+        // Given
+        URL config = config("com.example.A", "  = 1 | 2");
+        // When / Then
+        assertThatThrownBy(() -> parser.parse(Object.class, config))
+                .isInstanceOf(ValueTypeLoaderError.class)
+                .hasMessageContaining(":2: Sample representations without provider-class name");
+    }
+
+    @Test
+    public void test_illegal_name() throws Exception {
+        // Given
+        URL config = config("com.example A = 1");
+        // When / Then
+        assertThatThrownBy(() -> parser.parse(Object.class, config))
+                .isInstanceOf(ValueTypeLoaderError.class)
+                .hasMessageContaining(":1: Illegal configuration-file syntax");
+    }
+
+    private URL config(final String... lines) throws Exception {
+        File file = folder.newFile();
+        Files.write(file.toPath(), Arrays.asList(lines), StandardCharsets.UTF_8);
+        return file.toURI().toURL();
+    }
+
+}
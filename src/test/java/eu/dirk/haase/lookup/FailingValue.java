@@ -0,0 +1,5 @@
+package eu.dirk.haase.lookup;
+
+public interface FailingValue {
+
+}
@@ -0,0 +1,12 @@
+package eu.dirk.haase.lookup;
+
+import java.util.function.Function;
+
+public class FailingValueProvider implements FailingValue, Function<String, FailingValue> {
+
+    @Override
+    public FailingValue apply(final String representation) {
+        throw new IllegalArgumentException("Cannot convert: " + representation);
+    }
+
+}
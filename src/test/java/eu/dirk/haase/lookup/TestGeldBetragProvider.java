@@ -0,0 +1,39 @@
+package eu.dirk.haase.lookup;
+
+import eu.dirk.haase.eu.dirk.haase.domain.GeldBetrag;
+import eu.dirk.haase.eu.dirk.haase.domain.MyGeldBetrag;
+import eu.dirk.haase.value.NonValue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+public class TestGeldBetragProvider extends MyGeldBetrag implements Function<String, GeldBetrag> {
+
+    // Counted per instance, so that providers of other loaders, possibly
+    // still running in another test, cannot disturb the counts
+    final AtomicInteger applied = new AtomicInteger();
+    final AtomicInteger nonValues = new AtomicInteger();
+
+    @Override
+    public GeldBetrag apply(final String representation) {
+        applied.incrementAndGet();
+        if (representation.isEmpty()) {
+            return NonValue.create(GeldBetrag.class, this);
+        }
+        if ("-".equals(representation)) {
+            // A value object which reports itself as a non-value
+            return new MyGeldBetrag();
+        }
+        return valueOf(representation);
+    }
+
+    @Override
+    public GeldBetrag valueOf(final CharSequence representation) {
+        final GeldBetrag value = super.valueOf(representation);
+        if (NonValue.isNonValue.test(value)) {
+            nonValues.incrementAndGet();
+        }
+        return value;
+    }
+
+}
@@ -0,0 +1,412 @@
+package eu.dirk.haase.lookup;
+
+import eu.dirk.haase.eu.dirk.haase.domain.GeldBetrag;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.BlockJUnit4ClassRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@RunWith(BlockJUnit4ClassRunner.class)
+public class ValueConversionProcessorTest {
+
+
+    @Test
+    public void test_ordered() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            // Given
+            Queue<CharSequence> nonValues = new ConcurrentLinkedQueue<>();
+            ValueConversionProcessor<GeldBetrag> processor = ValueConversionProcessor.create(
+                    ValueTypeLoader.load(GeldBetrag.class), nonValues::add, executor, 4, 3, true);
+            // When
+            List<String> values = convert(processor, 1000);
+            // Then
+            assertThat(values).isEqualTo(expectedValues(1000));
+            assertThat(nonValues).hasSize(100);
+        } finally {
+            shutdown(executor);
+        }
+    }
+
+    @Test
+    public void test_unordered() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            // Given
+            Queue<CharSequence> nonValues = new ConcurrentLinkedQueue<>();
+            ValueConversionProcessor<GeldBetrag> processor = ValueConversionProcessor.create(
+                    ValueTypeLoader.load(GeldBetrag.class), nonValues::add, executor, 7, 3, false);
+            // When
+            List<String> values = convert(processor, 1000);
+            // Then
+            assertThat(values).containsExactlyInAnyOrderElementsOf(expectedValues(1000));
+            assertThat(nonValues).hasSize(100);
+        } finally {
+            shutdown(executor);
+        }
+    }
+
+    @Test
+    public void test_demand_bounded_by_stalled_subscriber() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            // Given
+            ValueConversionProcessor<GeldBetrag> processor = ValueConversionProcessor.create(
+                    ValueTypeLoader.load(GeldBetrag.class), (r) -> { }, executor, 4, 3, false);
+            RecordingSubscriber<GeldBetrag> subscriber = new RecordingSubscriber<>(0, Integer.MAX_VALUE);
+            TestSubscription upstream = new TestSubscription();
+            processor.subscribe(subscriber);
+            processor.onSubscribe(upstream);
+            // When
+            int stalledAt = upstream.push(processor, 1000, 200);
+            long maxOutstandingWhileStalled = upstream.maxOutstanding;
+            subscriber.request(Long.MAX_VALUE);
+            int delivered = upstream.push(processor, 1000, 10_000);
+            processor.onComplete();
+            // Then
+            assertThat(stalledAt).isLessThan(1000);
+            assertThat(maxOutstandingWhileStalled).isLessThanOrEqualTo(4 * 3);
+            assertThat(upstream.maxOutstanding).isLessThanOrEqualTo(4 * 3);
+            assertThat(delivered).isEqualTo(1000);
+            assertThat(subscriber.done.get(30, TimeUnit.SECONDS)).hasSize(1000);
+            assertThat(upstream.overlapping).isFalse();
+        } finally {
+            shutdown(executor);
+        }
+    }
+
+    @Test
+    public void test_downstream_cancel_cancels_upstream() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            // Given
+            ValueConversionProcessor<GeldBetrag> processor = ValueConversionProcessor.create(
+                    ValueTypeLoader.load(GeldBetrag.class), (r) -> { }, executor, 4, 3, true);
+            RecordingSubscriber<GeldBetrag> subscriber = new RecordingSubscriber<>(Long.MAX_VALUE, 1);
+            TestSubscription upstream = new TestSubscription();
+            processor.subscribe(subscriber);
+            processor.onSubscribe(upstream);
+            // When
+            int delivered = upstream.push(processor, 1000, 10_000);
+            // Then
+            assertThat(upstream.cancelled).isTrue();
+            assertThat(delivered).isLessThan(1000);
+            assertThat(subscriber.values).hasSize(1);
+            assertThat(upstream.overlapping).isFalse();
+        } finally {
+            shutdown(executor);
+        }
+    }
+
+    @Test
+    public void test_upstream_error_propagated() throws Exception {
+        // Given
+        ValueConversionProcessor<GeldBetrag> processor = ValueConversionProcessor.create(
+                ValueTypeLoader.load(GeldBetrag.class), (r) -> { });
+        RecordingSubscriber<GeldBetrag> subscriber = new RecordingSubscriber<>(Long.MAX_VALUE, Integer.MAX_VALUE);
+        TestSubscription upstream = new TestSubscription();
+        processor.subscribe(subscriber);
+        processor.onSubscribe(upstream);
+        // When
+        upstream.push(processor, 2, 10_000);
+        processor.onError(new IllegalStateException("upstream failed"));
+        // Then
+        assertThatThrownBy(() -> subscriber.done.get(30, TimeUnit.SECONDS))
+                .hasCauseInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("upstream failed");
+        assertThat(upstream.cancelled).isFalse();
+    }
+
+    @Test
+    public void test_provider_exception_propagated() throws Exception {
+        // Given
+        ValueConversionProcessor<FailingValue> processor = ValueConversionProcessor.create(
+                ValueTypeLoader.load(FailingValue.class), (r) -> { });
+        RecordingSubscriber<FailingValue> subscriber = new RecordingSubscriber<>(Long.MAX_VALUE, Integer.MAX_VALUE);
+        TestSubscription upstream = new TestSubscription();
+        processor.subscribe(subscriber);
+        processor.onSubscribe(upstream);
+        // When
+        upstream.push(processor, 1, 10_000);
+        processor.onComplete();
+        // Then
+        assertThatThrownBy(() -> subscriber.done.get(30, TimeUnit.SECONDS))
+                .hasCauseInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("Cannot convert: 1");
+        assertThat(upstream.cancelled).isTrue();
+    }
+
+    @Test
+    public void test_reused_record_buffer() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            // Given
+            ValueConversionProcessor<GeldBetrag> processor = ValueConversionProcessor.create(
+                    ValueTypeLoader.load(GeldBetrag.class), (r) -> { }, executor, 4, 3, true);
+            RecordingSubscriber<GeldBetrag> subscriber = new RecordingSubscriber<>(Long.MAX_VALUE, Integer.MAX_VALUE);
+            TestSubscription upstream = new TestSubscription();
+            processor.subscribe(subscriber);
+            processor.onSubscribe(upstream);
+            // When
+            upstream.push(processor, 100, 10_000);
+            processor.onComplete();
+            // Then
+            assertThat(subscriber.done.get(30, TimeUnit.SECONDS))
+                    .extracting(GeldBetrag::getValue)
+                    .isEqualTo(IntStream.rangeClosed(1, 100).mapToObj(Integer::toString).collect(Collectors.toList()));
+        } finally {
+            shutdown(executor);
+        }
+    }
+
+    @Test
+    public void test_null_record_rejected() {
+        // Given
+        ValueConversionProcessor<GeldBetrag> processor = ValueConversionProcessor.create(
+                ValueTypeLoader.load(GeldBetrag.class), (r) -> { });
+        // When / Then
+        assertThatThrownBy(() -> processor.onNext(null)).isInstanceOf(NullPointerException.class);
+    }
+
+    @Test
+    public void test_value_object_non_value_routed() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            // Given
+            Queue<CharSequence> nonValues = new ConcurrentLinkedQueue<>();
+            ValueConversionProcessor<GeldBetrag> processor = ValueConversionProcessor.create(
+                    ValueTypeLoader.load(GeldBetrag.class), nonValues::add, executor, 4, 3, true);
+            RecordingSubscriber<GeldBetrag> subscriber = new RecordingSubscriber<>(Long.MAX_VALUE, Integer.MAX_VALUE);
+            processor.subscribe(subscriber);
+            processor.onSubscribe(new TestSubscription());
+            // When
+            processor.onNext("-");
+            processor.onNext("1");
+            processor.onComplete();
+            // Then
+            assertThat(subscriber.done.get(30, TimeUnit.SECONDS)).extracting(GeldBetrag::getValue).containsExactly("1");
+            assertThat(nonValues).containsExactly("-");
+        } finally {
+            shutdown(executor);
+        }
+    }
+
+    @Test
+    public void test_signals_delivered_on_executor() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4, (r) -> new Thread(r, "converter"));
+        try {
+            // Given
+            ValueConversionProcessor<GeldBetrag> processor = ValueConversionProcessor.create(
+                    ValueTypeLoader.load(GeldBetrag.class), (r) -> { }, executor, 4, 3, false);
+            RecordingSubscriber<GeldBetrag> subscriber = new RecordingSubscriber<>(Long.MAX_VALUE, Integer.MAX_VALUE);
+            TestSubscription upstream = new TestSubscription();
+            processor.subscribe(subscriber);
+            processor.onSubscribe(upstream);
+            // When
+            upstream.push(processor, 100, 10_000);
+            processor.onComplete();
+            // Then
+            assertThat(subscriber.done.get(30, TimeUnit.SECONDS)).hasSize(100);
+            assertThat(subscriber.threads).containsOnly("converter");
+        } finally {
+            shutdown(executor);
+        }
+    }
+
+    @Test
+    public void test_second_subscriber_rejected() {
+        // Given
+        ValueConversionProcessor<GeldBetrag> processor = ValueConversionProcessor.create(
+                ValueTypeLoader.load(GeldBetrag.class), (r) -> { });
+        RecordingSubscriber<GeldBetrag> subscriber = new RecordingSubscriber<>(Long.MAX_VALUE, Integer.MAX_VALUE);
+        processor.subscribe(new RecordingSubscriber<>(Long.MAX_VALUE, Integer.MAX_VALUE));
+        // When
+        processor.subscribe(subscriber);
+        // Then
+        assertThatThrownBy(() -> subscriber.done.get(30, TimeUnit.SECONDS))
+                .hasCauseInstanceOf(IllegalStateException.class);
+    }
+
+    // Publishes the given number of records, every tenth of which is empty,
+    // through the processor to a subscriber requesting one value at a time.
+    //
+    private static List<String> convert(final ValueConversionProcessor<GeldBetrag> processor, final int count)
+            throws Exception {
+        final List<String> values = new ArrayList<>();
+        final CompletableFuture<List<String>> done = new CompletableFuture<>();
+        processor.subscribe(new Flow.Subscriber<GeldBetrag>() {
+
+            Flow.Subscription subscription;
+
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(1);
+            }
+
+            public void onNext(GeldBetrag item) {
+                values.add(item.getValue());
+                subscription.request(1);
+            }
+
+            public void onError(Throwable throwable) {
+                done.completeExceptionally(throwable);
+            }
+
+            public void onComplete() {
+                done.complete(values);
+            }
+        });
+        try (SubmissionPublisher<CharSequence> upstream = new SubmissionPublisher<>()) {
+            upstream.subscribe(processor);
+            for (int i = 0; i < count; ++i) {
+                upstream.submit((i % 10) == 0 ? "" : Integer.toString(i));
+            }
+        }
+        return done.get(30, TimeUnit.SECONDS);
+    }
+
+    // Stops the executor and waits for conversions still running, so that
+    // they do not overlap with the next test.
+    //
+    private static void shutdown(final ExecutorService executor) throws InterruptedException {
+        executor.shutdownNow();
+        assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+    }
+
+    private static List<String> expectedValues(final int count) {
+        return IntStream.range(0, count)
+                .filter((i) -> (i % 10) != 0)
+                .mapToObj(Integer::toString)
+                .collect(Collectors.toList());
+    }
+
+    // Acts as upstream: records the demand signalled by the processor,
+    // flags overlapping request/cancel calls and delivers records only
+    // within the outstanding demand.  Every record is written into the same
+    // buffer, so the processor must not keep the records it receives.
+    //
+    private static final class TestSubscription implements Flow.Subscription {
+
+        final AtomicLong requested = new AtomicLong();
+        final AtomicBoolean signalling = new AtomicBoolean();
+        final StringBuilder record = new StringBuilder();
+        volatile boolean overlapping;
+        volatile boolean cancelled;
+        long maxOutstanding;
+        int delivered;
+
+        @Override
+        public void request(final long n) {
+            enter();
+            requested.addAndGet(n);
+            leave();
+        }
+
+        @Override
+        public void cancel() {
+            enter();
+            cancelled = true;
+            leave();
+        }
+
+        private void enter() {
+            if (signalling.getAndSet(true)) {
+                overlapping = true;
+            }
+            Thread.yield();
+        }
+
+        private void leave() {
+            signalling.set(false);
+        }
+
+        // Delivers records until the given number has been delivered, the
+        // subscription is cancelled, or no demand arrives within the timeout;
+        // returns the number of records delivered so far.
+        //
+        int push(final Flow.Subscriber<? super CharSequence> subscriber, final int count, final long timeoutMillis)
+                throws InterruptedException {
+            while ((delivered < count) && !cancelled) {
+                final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+                while (requested.get() <= delivered) {
+                    if ((System.nanoTime() - deadline) > 0) {
+                        return delivered;
+                    }
+                    Thread.sleep(1);
+                }
+                maxOutstanding = Math.max(maxOutstanding, requested.get() - delivered);
+                record.setLength(0);
+                record.append(++delivered);
+                subscriber.onNext(record);
+            }
+            return delivered;
+        }
+
+    }
+
+    private static final class RecordingSubscriber<T> implements Flow.Subscriber<T> {
+
+        final List<T> values = new CopyOnWriteArrayList<>();
+        final CompletableFuture<List<T>> done = new CompletableFuture<>();
+        final Set<String> threads = ConcurrentHashMap.newKeySet();
+        final long initialRequest;
+        final int cancelAfter;
+        volatile Flow.Subscription subscription;
+
+        RecordingSubscriber(final long initialRequest, final int cancelAfter) {
+            this.initialRequest = initialRequest;
+            this.cancelAfter = cancelAfter;
+        }
+
+        void request(final long n) {
+            subscription.request(n);
+        }
+
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            if (initialRequest > 0) {
+                subscription.request(initialRequest);
+            }
+        }
+
+        public void onNext(T item) {
+            threads.add(Thread.currentThread().getName());
+            values.add(item);
+            if (values.size() >= cancelAfter) {
+                subscription.cancel();
+            }
+        }
+
+        public void onError(Throwable throwable) {
+            threads.add(Thread.currentThread().getName());
+            done.completeExceptionally(throwable);
+        }
+
+        public void onComplete() {
+            threads.add(Thread.currentThread().getName());
+            done.complete(values);
+        }
+
+    }
+
+}
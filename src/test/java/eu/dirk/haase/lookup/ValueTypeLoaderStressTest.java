@@ -0,0 +1,234 @@
+package eu.dirk.haase.lookup;
+
+import eu.dirk.haase.eu.dirk.haase.domain.GeldBetrag;
+import eu.dirk.haase.eu.dirk.haase.domain.MyGeldBetrag;
+import eu.dirk.haase.value.MemoizingValuefactory;
+import eu.dirk.haase.value.NonValue;
+import org.HdrHistogram.Histogram;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.BlockJUnit4ClassRunner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Scaling and stress harness for the loader and the value factories.
+ * <p>
+ * <p> Not part of the default build; run it with <tt>mvn test -Pstress</tt>.
+ * Every workload is first warmed up for <tt>stress.warmUpMillis</tt>
+ * (default 1000) at the maximum thread count, unmeasured, so that the
+ * first runs do not include interpretation and compilation.  It then runs
+ * for <tt>stress.durationMillis</tt> (default 200) at 1, 2, 4, ... threads
+ * up to and including <tt>stress.maxThreads</tt> (default: available
+ * processors, but at least 4).  Throughput and latency percentiles are
+ * printed per run.  Both are computed from the time spent in the measured
+ * operations only; checking the correctness invariant and recording the
+ * latency are excluded.
+ * <p>
+ * <p> {@link ValueTypeLoader} is not safe for concurrent use, so the shared
+ * loader workload serializes on the loader, as callers are required to do.
+ */
+@RunWith(BlockJUnit4ClassRunner.class)
+public class ValueTypeLoaderStressTest {
+
+    private static final long WARM_UP_MILLIS = Long.getLong("stress.warmUpMillis", 1000L);
+    private static final long DURATION_MILLIS = Long.getLong("stress.durationMillis", 200L);
+    private static final int MAX_THREADS = Integer.getInteger("stress.maxThreads",
+            Math.max(4, Runtime.getRuntime().availableProcessors()));
+    private static final int PROVIDER_COUNT = 2;
+
+
+    @Test
+    public void test_iterate_loader_per_thread() {
+        scale("iterate (loader per thread)", (t) -> {
+            final ValueTypeLoader<GeldBetrag> loader = ValueTypeLoader.load(GeldBetrag.class);
+            final List<Function<String, GeldBetrag>> first = providersOf(loader);
+            return new Operation<>(() -> providersOf(loader),
+                    (providers) -> isEachProviderOnce(providers) && providers.equals(first));
+        });
+    }
+
+    @Test
+    public void test_iterate_and_reload_shared_loader() {
+        final ValueTypeLoader<GeldBetrag> loader = ValueTypeLoader.load(GeldBetrag.class);
+        scale("iterate + reload (shared loader)", (t) -> {
+            final int[] count = {0};
+            return new Operation<>(() -> {
+                synchronized (loader) {
+                    if ((++count[0] % 16) == 0) {
+                        loader.reload();
+                    }
+                    return providersOf(loader);
+                }
+            }, ValueTypeLoaderStressTest::isEachProviderOnce);
+        });
+    }
+
+    @Test
+    public void test_valueOf() {
+        final GeldBetrag valuefactory = new MyGeldBetrag();
+        scale("valueOf", (t) -> {
+            final String representation = Integer.toString(t);
+            return new Operation<>(() -> valuefactory.valueOf(representation),
+                    (value) -> representation.equals(value.getValue()));
+        });
+    }
+
+    @Test
+    public void test_memoized_valueOf() {
+        final MemoizingValuefactory<GeldBetrag> valuefactory = MemoizingValuefactory.memoize(new MyGeldBetrag(), 64);
+        scale("memoized valueOf", (t) -> {
+            final int[] count = {t};
+            final String[] representation = {null};
+            return new Operation<>(() -> {
+                representation[0] = Integer.toString(++count[0] % 128);
+                return valuefactory.valueOf(representation[0]);
+            }, (value) -> representation[0].equals(value.getValue()));
+        });
+        assertThat(valuefactory.size()).isLessThanOrEqualTo(64);
+    }
+
+    @Test
+    public void test_NonValue_create() {
+        final GeldBetrag valuefactory = new MyGeldBetrag();
+        scale("NonValue.create", (t) -> new Operation<>(
+                () -> NonValue.create(GeldBetrag.class, valuefactory),
+                NonValue.isNonValue));
+    }
+
+    private static List<Function<String, GeldBetrag>> providersOf(final ValueTypeLoader<GeldBetrag> loader) {
+        final List<Function<String, GeldBetrag>> providers = new ArrayList<>(PROVIDER_COUNT);
+        for (Function<String, GeldBetrag> provider : loader) {
+            providers.add(provider);
+        }
+        return providers;
+    }
+
+    // An iteration must yield every provider exactly once.
+    //
+    private static boolean isEachProviderOnce(final List<Function<String, GeldBetrag>> providers) {
+        final Set<Function<String, GeldBetrag>> distinct = Collections.newSetFromMap(new IdentityHashMap<>());
+        distinct.addAll(providers);
+        return (providers.size() == PROVIDER_COUNT) && (distinct.size() == PROVIDER_COUNT);
+    }
+
+    private static <T> void scale(final String workload, final IntFunction<Operation<T>> operationFactory) {
+        run(workload, MAX_THREADS, WARM_UP_MILLIS, operationFactory);
+        for (int threads = 1; threads < MAX_THREADS; threads *= 2) {
+            report(workload, threads, run(workload, threads, DURATION_MILLIS, operationFactory));
+        }
+        report(workload, MAX_THREADS, run(workload, MAX_THREADS, DURATION_MILLIS, operationFactory));
+    }
+
+    // Runs the workload on the given number of threads and returns the
+    // latency histogram of every thread.
+    //
+    private static <T> List<Measurement> run(final String workload, final int threads, final long durationMillis,
+                                             final IntFunction<Operation<T>> operationFactory) {
+        final Queue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        final List<Measurement> measurements = new ArrayList<>();
+        final CountDownLatch ready = new CountDownLatch(threads);
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; ++t) {
+            final Operation<T> operation = operationFactory.apply(t);
+            final Measurement measurement = new Measurement();
+            measurements.add(measurement);
+            final Thread worker = new Thread(() -> {
+                ready.countDown();
+                try {
+                    start.await();
+                    final long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+                    long now = System.nanoTime();
+                    while (now < end) {
+                        final T result = operation.operation.get();
+                        final long latency = System.nanoTime() - now;
+                        measurement.histogram.recordValue(latency);
+                        measurement.measuredNanos += latency;
+                        if (!operation.invariant.test(result)) {
+                            throw new AssertionError(workload + ": invariant violated by " + result);
+                        }
+                        now = System.nanoTime();
+                    }
+                } catch (Throwable ex) {
+                    failures.add(ex);
+                }
+            }, workload + "-" + t);
+            workers.add(worker);
+            worker.start();
+        }
+        try {
+            ready.await();
+            start.countDown();
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            assertThat(failures).isEmpty();
+            return measurements;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    // The throughput is the sum of the throughput of every thread, each
+    // based on the time the thread spent in the measured operations.
+    //
+    private static void report(final String workload, final int threads, final List<Measurement> measurements) {
+        final Histogram histogram = new Histogram(TimeUnit.SECONDS.toNanos(10), 3);
+        double opsPerSecond = 0;
+        for (Measurement measurement : measurements) {
+            histogram.add(measurement.histogram);
+            if (measurement.measuredNanos > 0) {
+                opsPerSecond += measurement.histogram.getTotalCount() * 1e9 / measurement.measuredNanos;
+            }
+        }
+        assertThat(histogram.getTotalCount()).isPositive();
+        System.out.printf("%-34s threads=%3d ops=%10d ops/s=%12.0f p50=%8.2fus p99=%8.2fus p99.9=%8.2fus max=%10.2fus%n",
+                workload, threads, histogram.getTotalCount(), opsPerSecond,
+                histogram.getValueAtPercentile(50) / 1e3,
+                histogram.getValueAtPercentile(99) / 1e3,
+                histogram.getValueAtPercentile(99.9) / 1e3,
+                histogram.getMaxValue() / 1e3);
+    }
+
+    // The latencies of one worker thread, and the total time spent in the
+    // measured operations; only written by that thread.
+    //
+    private static final class Measurement {
+
+        final Histogram histogram = new Histogram(TimeUnit.SECONDS.toNanos(10), 3);
+        long measuredNanos;
+
+    }
+
+    // The measured operation of one worker thread, and the invariant its
+    // results must satisfy.
+    //
+    private static final class Operation<T> {
+
+        final Supplier<T> operation;
+        final Predicate<? super T> invariant;
+
+        Operation(final Supplier<T> operation, final Predicate<? super T> invariant) {
+            this.operation = operation;
+            this.invariant = invariant;
+        }
+
+    }
+
+}
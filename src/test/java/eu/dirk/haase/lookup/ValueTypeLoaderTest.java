@@ -0,0 +1,65 @@
+package eu.dirk.haase.lookup;
+
+import eu.dirk.haase.eu.dirk.haase.domain.GeldBetrag;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.BlockJUnit4ClassRunner;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@RunWith(BlockJUnit4ClassRunner.class)
+public class ValueTypeLoaderTest {
+
+
+    @Test
+    public void test_warmUp() {
+        // Given
+        ValueTypeLoader<GeldBetrag> loader = ValueTypeLoader.load(GeldBetrag.class);
+        // When
+        Duration duration = loader.warmUp(100);
+        // Then
+        assertThat(duration).isGreaterThan(Duration.ZERO);
+        assertThat(count(loader, (p) -> p.applied)).isEqualTo(100 * 3);
+        assertThat(count(loader, (p) -> p.nonValues)).isEqualTo(100);
+        assertThat(loader).hasSize(2);
+    }
+
+    @Test
+    public void test_warmUp_after_reload() {
+        // Given
+        ValueTypeLoader<GeldBetrag> loader = ValueTypeLoader.load(GeldBetrag.class);
+        loader.warmUp(1);
+        loader.reload();
+        // When
+        loader.warmUp(10);
+        // Then
+        assertThat(count(loader, (p) -> p.applied)).isEqualTo(10 * 3);
+    }
+
+    @Test
+    public void test_warmUp_negative_iterations() {
+        // Given
+        ValueTypeLoader<GeldBetrag> loader = ValueTypeLoader.load(GeldBetrag.class);
+        // When / Then
+        assertThatThrownBy(() -> loader.warmUp(-1)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    // Sums the given counter over the test providers of the loader.
+    //
+    private static int count(final ValueTypeLoader<GeldBetrag> loader,
+                             final Function<TestGeldBetragProvider, AtomicInteger> counter) {
+        int count = 0;
+        for (Function<String, GeldBetrag> provider : loader) {
+            if (provider instanceof TestGeldBetragProvider) {
+                count += counter.apply((TestGeldBetragProvider) provider).get();
+            }
+        }
+        return count;
+    }
+
+}
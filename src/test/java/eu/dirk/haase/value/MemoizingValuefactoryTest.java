@@ -0,0 +1,267 @@
+package eu.dirk.haase.value;
+
+import eu.dirk.haase.Valuefactory;
+import eu.dirk.haase.eu.dirk.haase.domain.GeldBetrag;
+import eu.dirk.haase.eu.dirk.haase.domain.MyGeldBetrag;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.BlockJUnit4ClassRunner;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@RunWith(BlockJUnit4ClassRunner.class)
+public class MemoizingValuefactoryTest {
+
+
+    @Test
+    public void test_memoized() {
+        // Given
+        AtomicInteger calls = new AtomicInteger();
+        Valuefactory<GeldBetrag> valuefactory = countingFactory(calls);
+        MemoizingValuefactory<GeldBetrag> memoizing = MemoizingValuefactory.memoize(valuefactory, 10);
+        // When
+        GeldBetrag geldBetrag1 = memoizing.valueOf("456");
+        GeldBetrag geldBetrag2 = memoizing.valueOf(new StringBuilder("456"));
+        // Then
+        assertThat(geldBetrag1).isSameAs(geldBetrag2);
+        assertThat(calls.get()).isEqualTo(1);
+        assertThat(memoizing.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void test_non_value_not_cached() {
+        // Given
+        AtomicInteger calls = new AtomicInteger();
+        Valuefactory<GeldBetrag> valuefactory = (r) -> {
+            calls.incrementAndGet();
+            return NonValue.create(GeldBetrag.class, new MyGeldBetrag());
+        };
+        MemoizingValuefactory<GeldBetrag> memoizing = MemoizingValuefactory.memoize(valuefactory, 10);
+        // When
+        GeldBetrag nonGeldBetrag1 = memoizing.valueOf("abc");
+        GeldBetrag nonGeldBetrag2 = memoizing.valueOf("abc");
+        GeldBetrag nonGeldBetrag3 = memoizing.valueOf(null);
+        // Then
+        assertThat(NonValue.isNonValue.test(nonGeldBetrag1)).isTrue();
+        assertThat(NonValue.isNonValue.test(nonGeldBetrag2)).isTrue();
+        assertThat(NonValue.isNonValue.test(nonGeldBetrag3)).isTrue();
+        assertThat(calls.get()).isEqualTo(3);
+        assertThat(memoizing.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void test_eviction() {
+        // Given
+        AtomicInteger calls = new AtomicInteger();
+        MemoizingValuefactory<GeldBetrag> memoizing = MemoizingValuefactory.memoize(countingFactory(calls), 2);
+        // When
+        memoizing.valueOf("1");
+        memoizing.valueOf("2");
+        memoizing.valueOf("3");
+        memoizing.valueOf("1");
+        // Then
+        assertThat(memoizing.size()).isEqualTo(2);
+        assertThat(calls.get()).isEqualTo(4);
+    }
+
+    @Test
+    public void test_exception_not_cached() {
+        // Given
+        AtomicInteger calls = new AtomicInteger();
+        MemoizingValuefactory<GeldBetrag> memoizing = MemoizingValuefactory.memoize((r) -> {
+            calls.incrementAndGet();
+            throw new IllegalArgumentException(r.toString());
+        }, 10);
+        // When / Then
+        assertThatThrownBy(() -> memoizing.valueOf("x")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> memoizing.valueOf("x")).isInstanceOf(IllegalArgumentException.class);
+        assertThat(calls.get()).isEqualTo(2);
+        assertThat(memoizing.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void test_checked_exception_not_cached() {
+        // Given
+        AtomicInteger calls = new AtomicInteger();
+        MemoizingValuefactory<GeldBetrag> memoizing = MemoizingValuefactory.memoize((r) -> {
+            calls.incrementAndGet();
+            return sneakyThrow(new IOException(r.toString()));
+        }, 10);
+        // When / Then
+        assertThatThrownBy(() -> memoizing.valueOf("x")).isInstanceOf(IOException.class);
+        assertThatThrownBy(() -> memoizing.valueOf("x")).isInstanceOf(IOException.class);
+        assertThat(calls.get()).isEqualTo(2);
+        assertThat(memoizing.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void test_value_object_non_value_not_cached() {
+        // Given
+        AtomicInteger calls = new AtomicInteger();
+        MemoizingValuefactory<GeldBetrag> memoizing = MemoizingValuefactory.memoize((r) -> {
+            calls.incrementAndGet();
+            return new MyGeldBetrag();
+        }, 10);
+        // When
+        GeldBetrag nonGeldBetrag1 = memoizing.valueOf("abc");
+        GeldBetrag nonGeldBetrag2 = memoizing.valueOf("abc");
+        // Then
+        assertThat(nonGeldBetrag1.isNonValue()).isTrue();
+        assertThat(nonGeldBetrag2.isNonValue()).isTrue();
+        assertThat(calls.get()).isEqualTo(2);
+        assertThat(memoizing.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void test_eviction_second_chance() {
+        // Given
+        AtomicInteger calls = new AtomicInteger();
+        MemoizingValuefactory<GeldBetrag> memoizing = MemoizingValuefactory.memoize(countingFactory(calls), 2);
+        // When
+        memoizing.valueOf("1");
+        memoizing.valueOf("1");
+        memoizing.valueOf("2");
+        memoizing.valueOf("3");
+        memoizing.valueOf("1");
+        // Then
+        assertThat(memoizing.size()).isEqualTo(2);
+        assertThat(calls.get()).isEqualTo(3);
+    }
+
+    @Test
+    public void test_concurrent_requests_coalesced() throws Exception {
+        // Given
+        AtomicInteger calls = new AtomicInteger();
+        // When
+        List<Future<GeldBetrag>> futures = coalesce(8, (r) -> {
+            calls.incrementAndGet();
+            return new MyGeldBetrag(r.toString());
+        });
+        // Then
+        GeldBetrag first = futures.get(0).get(10, TimeUnit.SECONDS);
+        for (Future<GeldBetrag> future : futures) {
+            assertThat(future.get(10, TimeUnit.SECONDS)).isSameAs(first);
+        }
+        assertThat(calls.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void test_concurrent_non_value_coalesced() throws Exception {
+        // Given
+        AtomicInteger calls = new AtomicInteger();
+        // When
+        List<Future<GeldBetrag>> futures = coalesce(8, (r) -> {
+            calls.incrementAndGet();
+            return NonValue.create(GeldBetrag.class, new MyGeldBetrag());
+        });
+        // Then
+        for (Future<GeldBetrag> future : futures) {
+            assertThat(NonValue.isNonValue.test(future.get(10, TimeUnit.SECONDS))).isTrue();
+        }
+        assertThat(calls.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void test_concurrent_exception_coalesced() throws Exception {
+        // Given
+        AtomicInteger calls = new AtomicInteger();
+        // When
+        List<Future<GeldBetrag>> futures = coalesce(8, (r) -> {
+            calls.incrementAndGet();
+            throw new IllegalArgumentException(r.toString());
+        });
+        // Then
+        for (Future<GeldBetrag> future : futures) {
+            assertThatThrownBy(() -> future.get(10, TimeUnit.SECONDS))
+                    .isInstanceOf(ExecutionException.class)
+                    .hasCauseInstanceOf(IllegalArgumentException.class);
+        }
+        assertThat(calls.get()).isEqualTo(1);
+    }
+
+    // Requests the same representation from the given number of threads.
+    // The delegate is held until all other threads wait for its result, so
+    // that every one of them takes the coalescing path.
+    //
+    private static List<Future<GeldBetrag>> coalesce(final int threads, final Valuefactory<GeldBetrag> valuefactory)
+            throws Exception {
+        final List<Thread> workers = new CopyOnWriteArrayList<>();
+        final CountDownLatch entered = new CountDownLatch(threads);
+        final MemoizingValuefactory<GeldBetrag> memoizing = MemoizingValuefactory.memoize((r) -> {
+            awaitOthersWaiting(entered, workers);
+            return valuefactory.valueOf(r);
+        }, 10);
+        final ExecutorService executor = Executors.newFixedThreadPool(threads, (r) -> {
+            Thread worker = new Thread(r);
+            workers.add(worker);
+            return worker;
+        });
+        try {
+            final List<Future<GeldBetrag>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; ++i) {
+                futures.add(executor.submit(() -> {
+                    entered.countDown();
+                    return memoizing.valueOf("456");
+                }));
+            }
+            for (Future<GeldBetrag> future : futures) {
+                try {
+                    future.get(10, TimeUnit.SECONDS);
+                } catch (ExecutionException ex) {
+                    // checked by the caller
+                }
+            }
+            return futures;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void awaitOthersWaiting(final CountDownLatch entered, final List<Thread> workers) {
+        try {
+            assertThat(entered.await(10, TimeUnit.SECONDS)).isTrue();
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (!othersWaiting(workers)) {
+                assertThat(System.nanoTime()).isLessThan(deadline);
+                Thread.sleep(1);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static boolean othersWaiting(final List<Thread> workers) {
+        for (Thread worker : workers) {
+            if ((worker != Thread.currentThread()) && (worker.getState() != Thread.State.WAITING)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T, E extends Throwable> T sneakyThrow(final Throwable ex) throws E {
+        throw (E) ex;
+    }
+
+    private static Valuefactory<GeldBetrag> countingFactory(final AtomicInteger calls) {
+        return (r) -> {
+            calls.incrementAndGet();
+            return new MyGeldBetrag(r.toString());
+        };
+    }
+
+}